@@ -6,6 +6,15 @@
    - Starts from Login page
    - DB credentials already set to the username/password you provided
    - Compile/run with MySQL Connector/J on classpath
+   - Ambulances are dispatched nearest-first from an in-memory grid and claimed
+     in the DB with SELECT ... FOR UPDATE SKIP LOCKED (MySQL 8+)
+   - Bookings/reviews past the retention window are moved to *_archive tables
+     by a background thread; booking lookups fall through to the archive
+   - Beds are counted per hospital and room type; a room is held while billing
+     and taken in the same transaction that writes the booking
+   - Doctors come from the DB; appointments are 30-minute slots kept per doctor
+     in a tree of busy blocks and claimed under a doctor row lock; a slot is
+     held until the booking that pays for it confirms it
 */
 
 import javax.imageio.ImageIO;
@@ -17,8 +26,26 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SpecializedHospitalManagementClean extends JFrame {
 
@@ -33,6 +60,14 @@ public class SpecializedHospitalManagementClean extends JFrame {
     private static final String BG_HOSP_URL  = "https://images.unsplash.com/photo-1582719478250-2f8d86f7f0f4?w=1600&q=80";
     private static final String LOGO_URL     = "https://images.unsplash.com/photo-1580281657520-0b1eae3a3f4?w=800&q=80";
 
+    // ---- default pickup / ambulance base when no coordinates are known
+    private static final double DEFAULT_LAT = 12.9716;
+    private static final double DEFAULT_LON = 77.5946;
+
+    // ---- room types ("<name> - <price>") and default beds of each type per hospital
+    private static final String[] ROOM_CHOICES = {"AC Single - 5000","Non-AC Single - 3000","2-Sharing - 3000","4-Sharing - 1500"};
+    private static final int[] ROOM_DEFAULT_BEDS = {5, 10, 20, 40};
+
     // UI
     private final CardLayout cardLayout = new CardLayout();
     private final JPanel root = new JPanel(cardLayout);
@@ -45,14 +80,29 @@ public class SpecializedHospitalManagementClean extends JFrame {
     private int lastPatientId = -1;
     private Integer bookedAmbulanceId = null;
     private Integer lastBookingId = null;
+    private int selectedHospitalId = -1;
+    private BedInventory.Hold roomHold = null;
+    private int selectedDoctorId = -1;
+    private Appointment appointment = null; // booked on the doctor page, kept once the booking is paid
 
     // DB helper
     private final DBHelper db;
+    private final AmbulanceDispatcher dispatcher;
+    private final BedInventory inventory;
+    private final AppointmentScheduler scheduler;
 
     public SpecializedHospitalManagementClean() {
         super("Specialized Hospital Management");
         db = new DBHelper(DB_URL, DB_USER, DB_PASS);
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        dispatcher = new AmbulanceDispatcher(db);
+        inventory = new BedInventory(db);
+        scheduler = new AppointmentScheduler(db);
+        new Archiver(db).start();
+        // closing must not strand DB state (ambulance still marked booked)
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { exitApp(); }
+        });
         setSize(1100, 700);
         setLocationRelativeTo(null);
 
@@ -72,6 +122,7 @@ public class SpecializedHospitalManagementClean extends JFrame {
         root.add(new WardFoodPanel(), "wardfood");
         root.add(new BillingPanel(), "billing");
         root.add(new SummaryPanel(), "summary");
+        root.add(new FrontDeskPanel(), "frontdesk");
 
         add(root);
         cardLayout.show(root, "login"); // always start at login
@@ -100,6 +151,10 @@ public class SpecializedHospitalManagementClean extends JFrame {
     // ---------- simple DB helper (specific exceptions) ----------
     private static class DBHelper {
         private final String url, user, pass;
+        private volatile boolean archiveReady = false;
+        private volatile boolean roomSchemaReady = false;
+        private volatile boolean roomsSeeded = false;
+        private volatile boolean doctorSchemaReady = false;
         DBHelper(String url, String user, String pass) {
             this.url = url; this.user = user; this.pass = pass;
             try {
@@ -185,6 +240,7 @@ public class SpecializedHospitalManagementClean extends JFrame {
                             ps2.executeUpdate();
                         }
                     }
+                    roomsSeeded = false; // the new hospitals need inventory rows
                 }
             }
         }
@@ -205,30 +261,153 @@ public class SpecializedHospitalManagementClean extends JFrame {
             return out;
         }
 
-        Integer ensureAndGetAmbulance() throws SQLException {
-            try (Connection c = connect();
-                 PreparedStatement psCount = c.prepareStatement("SELECT COUNT(*) FROM ambulance");
-                 ResultSet rs = psCount.executeQuery()) {
-                if (rs.next() && rs.getInt(1) == 0) {
-                    String ins = "INSERT INTO ambulance(driver_name, driver_age, driver_gender, driver_mobile, ambulance_number, nurse_name, nurse_age, nurse_gender, nurse_mobile, booked) VALUES(?,?,?,?,?,?,?,?,?,FALSE)";
-                    try (PreparedStatement ps = c.prepareStatement(ins)) {
-                        ps.setString(1, "Ravi Kumar");
-                        ps.setInt(2, 36);
-                        ps.setString(3, "Male");
-                        ps.setString(4, "9845012345");
-                        ps.setString(5, "AMB-1001");
-                        ps.setString(6, "Priya");
-                        ps.setInt(7, 29);
-                        ps.setString(8, "Female");
-                        ps.setString(9, "9845099999");
-                        ps.executeUpdate();
+        // adds a column when the live schema predates it
+        private void ensureColumn(Connection c, String table, String column, String definition) throws SQLException {
+            try (ResultSet rs = c.getMetaData().getColumns(c.getCatalog(), null, table, column)) {
+                if (rs.next()) return;
+            }
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+            }
+        }
+
+        // ensure position columns and a sample ambulance if empty
+        void ensureAmbulances() throws SQLException {
+            try (Connection c = connect()) {
+                ensureColumn(c, "ambulance", "latitude", "DOUBLE NULL");
+                ensureColumn(c, "ambulance", "longitude", "DOUBLE NULL");
+                try (PreparedStatement psCount = c.prepareStatement("SELECT COUNT(*) FROM ambulance");
+                     ResultSet rs = psCount.executeQuery()) {
+                    if (rs.next() && rs.getInt(1) == 0) {
+                        String ins = "INSERT INTO ambulance(driver_name, driver_age, driver_gender, driver_mobile, ambulance_number, nurse_name, nurse_age, nurse_gender, nurse_mobile, booked, latitude, longitude) VALUES(?,?,?,?,?,?,?,?,?,FALSE,?,?)";
+                        try (PreparedStatement ps = c.prepareStatement(ins)) {
+                            ps.setString(1, "Ravi Kumar");
+                            ps.setInt(2, 36);
+                            ps.setString(3, "Male");
+                            ps.setString(4, "9845012345");
+                            ps.setString(5, "AMB-1001");
+                            ps.setString(6, "Priya");
+                            ps.setInt(7, 29);
+                            ps.setString(8, "Female");
+                            ps.setString(9, "9845099999");
+                            ps.setDouble(10, DEFAULT_LAT);
+                            ps.setDouble(11, DEFAULT_LON);
+                            ps.executeUpdate();
+                        }
                     }
                 }
             }
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("SELECT id FROM ambulance LIMIT 1"); ResultSet rs2 = ps.executeQuery()) {
-                if (rs2.next()) return rs2.getInt(1);
-                return null;
+        }
+
+        List<AmbulanceSpot> listAmbulanceSpots() throws SQLException {
+            List<AmbulanceSpot> out = new ArrayList<>();
+            String q = "SELECT id, latitude, longitude, booked FROM ambulance";
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(q); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    AmbulanceSpot a = new AmbulanceSpot();
+                    a.id = rs.getInt(1);
+                    a.lat = rs.getDouble(2);
+                    if (rs.wasNull()) a.lat = DEFAULT_LAT;
+                    a.lon = rs.getDouble(3);
+                    if (rs.wasNull()) a.lon = DEFAULT_LON;
+                    a.booked = rs.getBoolean(4);
+                    out.add(a);
+                }
             }
+            return out;
+        }
+
+        // claims the first free candidate (in the given order) that no other terminal holds;
+        // rows locked by a concurrent dispatch are skipped instead of waited on
+        Integer claimAmbulance(List<Integer> candidates) throws SQLException {
+            if (candidates.isEmpty()) return null;
+            StringBuilder q = new StringBuilder("SELECT id FROM ambulance WHERE booked = FALSE AND id IN (");
+            for (int i = 0; i < candidates.size(); i++) q.append(i == 0 ? "?" : ",?");
+            q.append(") FOR UPDATE SKIP LOCKED");
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    Set<Integer> free = new HashSet<>();
+                    try (PreparedStatement ps = c.prepareStatement(q.toString())) {
+                        for (int i = 0; i < candidates.size(); i++) ps.setInt(i + 1, candidates.get(i));
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) free.add(rs.getInt(1));
+                        }
+                    }
+                    Integer claimed = null;
+                    for (Integer id : candidates) {
+                        if (free.contains(id)) { claimed = id; break; }
+                    }
+                    if (claimed != null) {
+                        try (PreparedStatement ps = c.prepareStatement("UPDATE ambulance SET booked = TRUE WHERE id=?")) {
+                            ps.setInt(1, claimed);
+                            ps.executeUpdate();
+                        }
+                    }
+                    c.commit();
+                    return claimed;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        // slow path for dispatch: nearest free vehicle by the same flat-earth distance, rows held by
+        // concurrent dispatches skipped; null only when no free ambulance exists
+        Integer claimNearestAmbulance(double lat, double lon) throws SQLException {
+            String q = "SELECT id FROM ambulance WHERE booked = FALSE "
+                    + "ORDER BY POW(COALESCE(latitude, ?) - ?, 2) + POW((COALESCE(longitude, ?) - ?) * ?, 2) LIMIT 1 FOR UPDATE SKIP LOCKED";
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    Integer claimed = null;
+                    try (PreparedStatement ps = c.prepareStatement(q)) {
+                        ps.setDouble(1, DEFAULT_LAT);
+                        ps.setDouble(2, lat);
+                        ps.setDouble(3, DEFAULT_LON);
+                        ps.setDouble(4, lon);
+                        ps.setDouble(5, Math.cos(Math.toRadians(lat)));
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) claimed = rs.getInt(1);
+                        }
+                    }
+                    if (claimed != null) {
+                        try (PreparedStatement ps = c.prepareStatement("UPDATE ambulance SET booked = TRUE WHERE id=?")) {
+                            ps.setInt(1, claimed);
+                            ps.executeUpdate();
+                        }
+                    }
+                    c.commit();
+                    return claimed;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        void releaseAmbulance(int aid) throws SQLException {
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("UPDATE ambulance SET booked = FALSE WHERE id=?")) {
+                ps.setInt(1, aid);
+                ps.executeUpdate();
+            }
+        }
+
+        // vehicles currently out on a trip
+        List<Ambulance> listBusyAmbulances() throws SQLException {
+            List<Ambulance> out = new ArrayList<>();
+            String q = "SELECT id, ambulance_number, driver_name FROM ambulance WHERE booked = TRUE ORDER BY id";
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(q); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Ambulance a = new Ambulance();
+                    a.id = rs.getInt(1);
+                    a.ambulanceNumber = rs.getString(2);
+                    a.driverName = rs.getString(3);
+                    out.add(a);
+                }
+            }
+            return out;
         }
 
         Ambulance getAmbulance(int aid) throws SQLException {
@@ -255,18 +434,61 @@ public class SpecializedHospitalManagementClean extends JFrame {
             }
         }
 
-        int createBooking(int userId, int patientId, int hospitalId, Integer ambulanceId, String roomType, String foodPlan, double total) throws SQLException {
-            String ins = "INSERT INTO bookings(user_id, patient_id, hospital_id, doctor_id, ambulance_id, booking_date) VALUES(?,?,?,?,?,CURRENT_TIMESTAMP)";
-            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(ins, Statement.RETURN_GENERATED_KEYS)) {
-                if (userId > 0) ps.setInt(1, userId); else ps.setNull(1, Types.INTEGER);
-                ps.setInt(2, patientId);
-                if (hospitalId > 0) ps.setInt(3, hospitalId); else ps.setNull(3, Types.INTEGER);
-                ps.setNull(4, Types.INTEGER);
-                if (ambulanceId != null) ps.setInt(5, ambulanceId); else ps.setNull(5, Types.INTEGER);
-                ps.executeUpdate();
-                try (ResultSet rs = ps.getGeneratedKeys()) {
-                    if (rs.next()) return rs.getInt(1);
-                    return -1;
+        // takes a bed of roomType in the same transaction, consuming roomHoldId when it is still live;
+        // without a live hold, beds held by other desks are not available. The appointment, if any, is
+        // confirmed in the same transaction. Returns -1 (nothing written) when no bed is left and -2
+        // (nothing written) when the appointment hold has lapsed.
+        int createBooking(int userId, int patientId, int hospitalId, Integer doctorId, Integer appointmentId, Integer ambulanceId,
+                          String roomType, Integer roomHoldId, String foodPlan, double total) throws SQLException {
+            ensureRoomSchema();
+            String take = "UPDATE room_inventory SET occupied = occupied + 1 WHERE hospital_id=? AND room_type=? AND occupied < capacity";
+            String ins = "INSERT INTO bookings(user_id, patient_id, hospital_id, doctor_id, ambulance_id, room_type, booking_date) VALUES(?,?,?,?,?,?,CURRENT_TIMESTAMP)";
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    if (hospitalId > 0 && roomType != null) {
+                        int[] stock = lockRoomStock(c, hospitalId, roomType);
+                        if (stock == null) { c.rollback(); return -1; }
+                        boolean ownHold = false;
+                        if (roomHoldId != null) {
+                            try (PreparedStatement ps = c.prepareStatement("DELETE FROM room_holds WHERE id=? AND expires_at > NOW()")) {
+                                ps.setInt(1, roomHoldId);
+                                ownHold = ps.executeUpdate() == 1;
+                            }
+                        }
+                        if (!ownHold && stock[1] + liveRoomHolds(c, hospitalId, roomType) >= stock[0]) { c.rollback(); return -1; }
+                        try (PreparedStatement ps = c.prepareStatement(take)) {
+                            ps.setInt(1, hospitalId);
+                            ps.setString(2, roomType);
+                            if (ps.executeUpdate() == 0) { c.rollback(); return -1; }
+                        }
+                    }
+                    int bookingId = -1;
+                    try (PreparedStatement ps = c.prepareStatement(ins, Statement.RETURN_GENERATED_KEYS)) {
+                        if (userId > 0) ps.setInt(1, userId); else ps.setNull(1, Types.INTEGER);
+                        ps.setInt(2, patientId);
+                        if (hospitalId > 0) ps.setInt(3, hospitalId); else ps.setNull(3, Types.INTEGER);
+                        if (doctorId != null) ps.setInt(4, doctorId); else ps.setNull(4, Types.INTEGER);
+                        if (ambulanceId != null) ps.setInt(5, ambulanceId); else ps.setNull(5, Types.INTEGER);
+                        ps.setString(6, roomType);
+                        ps.executeUpdate();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            if (rs.next()) bookingId = rs.getInt(1);
+                        }
+                    }
+                    if (appointmentId != null) {
+                        String confirm = "UPDATE appointments SET held_until=NULL, booking_id=? WHERE id=? AND (held_until IS NULL OR held_until > NOW())";
+                        try (PreparedStatement ps = c.prepareStatement(confirm)) {
+                            ps.setInt(1, bookingId);
+                            ps.setInt(2, appointmentId);
+                            if (ps.executeUpdate() == 0) { c.rollback(); return -2; }
+                        }
+                    }
+                    c.commit();
+                    return bookingId;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
                 }
             }
         }
@@ -281,17 +503,1061 @@ public class SpecializedHospitalManagementClean extends JFrame {
                 ps.executeUpdate();
             }
         }
+
+        // ---- doctors / appointments
+        void ensureDoctorSchema() throws SQLException {
+            if (doctorSchemaReady) return;
+            try (Connection c = connect(); Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS doctors (id INT AUTO_INCREMENT PRIMARY KEY, hospital_id INT NULL, name VARCHAR(100) NOT NULL, "
+                        + "age INT NULL, field VARCHAR(100) NULL, experience_years INT NULL, INDEX idx_doctors_hospital (hospital_id))");
+                ensureColumn(c, "doctors", "hospital_id", "INT NULL");
+                ensureColumn(c, "doctors", "age", "INT NULL");
+                ensureColumn(c, "doctors", "field", "VARCHAR(100) NULL");
+                ensureColumn(c, "doctors", "experience_years", "INT NULL");
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS appointments (id INT AUTO_INCREMENT PRIMARY KEY, doctor_id INT NOT NULL, patient_id INT NULL, "
+                        + "start_at DATETIME NOT NULL, end_at DATETIME NOT NULL, held_until DATETIME NULL, booking_id INT NULL, "
+                        + "INDEX idx_appointments_doctor (doctor_id, start_at))");
+                ensureColumn(c, "appointments", "held_until", "DATETIME NULL");
+                ensureColumn(c, "appointments", "booking_id", "INT NULL");
+            }
+            doctorSchemaReady = true;
+        }
+
+        // ensure sample doctors (two per hospital) if empty
+        void ensureDoctors() throws SQLException {
+            ensureDoctorSchema();
+            try (Connection c = connect();
+                 PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM doctors");
+                 ResultSet rs = ps.executeQuery()) {
+                if (rs.next() && rs.getInt(1) == 0) {
+                    String ins = "INSERT INTO doctors (hospital_id, name, age, field, experience_years) SELECT id, ?, ?, ?, ? FROM hospitals";
+                    try (PreparedStatement ps2 = c.prepareStatement(ins)) {
+                        Object[][] samples = {{"Dr. A. Kumar", 45, "Cardiology", 18}, {"Dr. M. Sharma", 39, "General Medicine", 12}};
+                        for (Object[] d : samples) {
+                            ps2.setString(1, (String) d[0]);
+                            ps2.setInt(2, (Integer) d[1]);
+                            ps2.setString(3, (String) d[2]);
+                            ps2.setInt(4, (Integer) d[3]);
+                            ps2.executeUpdate();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Doctor> listDoctors(int hospitalId) throws SQLException {
+            List<Doctor> out = new ArrayList<>();
+            String q = "SELECT id, hospital_id, name, age, field, experience_years FROM doctors WHERE hospital_id=? ORDER BY name";
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(q)) {
+                ps.setInt(1, hospitalId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Doctor d = new Doctor();
+                        d.id = rs.getInt(1);
+                        d.hospitalId = nullableInt(rs, 2);
+                        d.name = rs.getString(3);
+                        d.age = rs.getInt(4);
+                        d.field = rs.getString(5);
+                        d.experienceYears = rs.getInt(6);
+                        out.add(d);
+                    }
+                }
+            }
+            return out;
+        }
+
+        // appointments of one doctor overlapping [from, to): confirmed ones and unpaid holds still live
+        List<Appointment> listAppointments(int doctorId, LocalDateTime from, LocalDateTime to) throws SQLException {
+            List<Appointment> out = new ArrayList<>();
+            String q = "SELECT id, start_at, end_at FROM appointments WHERE doctor_id=? AND start_at < ? AND end_at > ?"
+                    + " AND (held_until IS NULL OR held_until > NOW())";
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(q)) {
+                ps.setInt(1, doctorId);
+                ps.setTimestamp(2, Timestamp.valueOf(to));
+                ps.setTimestamp(3, Timestamp.valueOf(from));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Appointment a = new Appointment();
+                        a.id = rs.getInt(1);
+                        a.doctorId = doctorId;
+                        a.start = rs.getTimestamp(2).toLocalDateTime();
+                        a.end = rs.getTimestamp(3).toLocalDateTime();
+                        out.add(a);
+                    }
+                }
+            }
+            return out;
+        }
+
+        // the doctor row lock serializes bookings for one doctor across terminals. The row is an unpaid
+        // hold until createBooking confirms it; past held_until it no longer blocks the slot.
+        // Returns the appointment id, or null when the slot overlaps a live appointment.
+        Integer bookAppointment(int doctorId, int patientId, LocalDateTime start, LocalDateTime end, int holdSeconds) throws SQLException {
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    try (PreparedStatement ps = c.prepareStatement("SELECT id FROM doctors WHERE id=? FOR UPDATE")) {
+                        ps.setInt(1, doctorId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next()) { c.rollback(); return null; }
+                        }
+                    }
+                    String overlap = "SELECT 1 FROM appointments WHERE doctor_id=? AND start_at < ? AND end_at > ?"
+                            + " AND (held_until IS NULL OR held_until > NOW()) LIMIT 1";
+                    try (PreparedStatement ps = c.prepareStatement(overlap)) {
+                        ps.setInt(1, doctorId);
+                        ps.setTimestamp(2, Timestamp.valueOf(end));
+                        ps.setTimestamp(3, Timestamp.valueOf(start));
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) { c.rollback(); return null; }
+                        }
+                    }
+                    Integer id = null;
+                    String ins = "INSERT INTO appointments(doctor_id, patient_id, start_at, end_at, held_until) VALUES(?,?,?,?,NOW() + INTERVAL ? SECOND)";
+                    try (PreparedStatement ps = c.prepareStatement(ins, Statement.RETURN_GENERATED_KEYS)) {
+                        ps.setInt(1, doctorId);
+                        if (patientId > 0) ps.setInt(2, patientId); else ps.setNull(2, Types.INTEGER);
+                        ps.setTimestamp(3, Timestamp.valueOf(start));
+                        ps.setTimestamp(4, Timestamp.valueOf(end));
+                        ps.setInt(5, holdSeconds);
+                        ps.executeUpdate();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            if (rs.next()) id = rs.getInt(1);
+                        }
+                    }
+                    c.commit();
+                    return id;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        void cancelAppointment(int appointmentId) throws SQLException {
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("DELETE FROM appointments WHERE id=?")) {
+                ps.setInt(1, appointmentId);
+                ps.executeUpdate();
+            }
+        }
+
+        // unpaid holds whose desk never came back
+        void purgeExpiredAppointments() throws SQLException {
+            ensureDoctorSchema();
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("DELETE FROM appointments WHERE held_until <= NOW()")) {
+                ps.executeUpdate();
+            }
+        }
+
+        // ---- room inventory
+        private void ensureIndex(Connection c, String table, String index, String columns) throws SQLException {
+            try (ResultSet rs = c.getMetaData().getIndexInfo(c.getCatalog(), null, table, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return;
+                }
+            }
+            try (Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE INDEX " + index + " ON " + table + " (" + columns + ")");
+            }
+        }
+
+        // bookings_archive must carry every bookings column (archiveColumns refuses to drop one)
+        private void ensureBookingColumn(Connection c, String column, String definition) throws SQLException {
+            ensureColumn(c, "bookings", column, definition);
+            try (ResultSet rs = c.getMetaData().getTables(c.getCatalog(), null, "bookings_archive", null)) {
+                if (rs.next()) ensureColumn(c, "bookings_archive", column, definition);
+            }
+        }
+
+        void ensureRoomSchema() throws SQLException {
+            if (roomSchemaReady) return;
+            try (Connection c = connect(); Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS room_inventory (hospital_id INT NOT NULL, room_type VARCHAR(40) NOT NULL, "
+                        + "capacity INT NOT NULL, occupied INT NOT NULL DEFAULT 0, PRIMARY KEY (hospital_id, room_type))");
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS room_holds (id INT AUTO_INCREMENT PRIMARY KEY, hospital_id INT NOT NULL, room_type VARCHAR(40) NOT NULL, "
+                        + "expires_at DATETIME NOT NULL, INDEX idx_room_holds_room (hospital_id, room_type, expires_at))");
+                ensureBookingColumn(c, "room_type", "VARCHAR(40) NULL");
+                ensureBookingColumn(c, "discharged_at", "DATETIME NULL");
+                ensureIndex(c, "bookings", "idx_bookings_room", "hospital_id, room_type, discharged_at");
+            }
+            roomSchemaReady = true;
+        }
+
+        // default bed counts for hospitals without inventory rows; once per process, again after
+        // ensureHospitals adds hospitals
+        void seedRoomInventory() throws SQLException {
+            if (roomsSeeded) return;
+            ensureRoomSchema();
+            String ins = "INSERT IGNORE INTO room_inventory(hospital_id, room_type, capacity, occupied) SELECT id, ?, ?, 0 FROM hospitals";
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(ins)) {
+                for (int i = 0; i < ROOM_CHOICES.length; i++) {
+                    ps.setString(1, roomKey(ROOM_CHOICES[i]));
+                    ps.setInt(2, ROOM_DEFAULT_BEDS[i]);
+                    ps.executeUpdate();
+                }
+            }
+            roomsSeeded = true;
+        }
+
+        // {capacity, occupied} with the inventory row locked, or null when the hospital has no such rooms
+        private int[] lockRoomStock(Connection c, int hospitalId, String roomType) throws SQLException {
+            try (PreparedStatement ps = c.prepareStatement("SELECT capacity, occupied FROM room_inventory WHERE hospital_id=? AND room_type=? FOR UPDATE")) {
+                ps.setInt(1, hospitalId);
+                ps.setString(2, roomType);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? new int[] {rs.getInt(1), rs.getInt(2)} : null;
+                }
+            }
+        }
+
+        private int liveRoomHolds(Connection c, int hospitalId, String roomType) throws SQLException {
+            try (PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM room_holds WHERE hospital_id=? AND room_type=? AND expires_at > NOW()")) {
+                ps.setInt(1, hospitalId);
+                ps.setString(2, roomType);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        }
+
+        // the inventory row lock serializes holds for one room type across terminals;
+        // returns the hold id, or null when occupied + live holds already fill the capacity
+        Integer placeRoomHold(int hospitalId, String roomType, int seconds) throws SQLException {
+            ensureRoomSchema();
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    int[] stock = lockRoomStock(c, hospitalId, roomType);
+                    if (stock == null || stock[1] + liveRoomHolds(c, hospitalId, roomType) >= stock[0]) { c.rollback(); return null; }
+                    Integer id = null;
+                    String ins = "INSERT INTO room_holds(hospital_id, room_type, expires_at) VALUES(?,?,NOW() + INTERVAL ? SECOND)";
+                    try (PreparedStatement ps = c.prepareStatement(ins, Statement.RETURN_GENERATED_KEYS)) {
+                        ps.setInt(1, hospitalId);
+                        ps.setString(2, roomType);
+                        ps.setInt(3, seconds);
+                        ps.executeUpdate();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            if (rs.next()) id = rs.getInt(1);
+                        }
+                    }
+                    c.commit();
+                    return id;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        void releaseRoomHold(int holdId) throws SQLException {
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement("DELETE FROM room_holds WHERE id=?")) {
+                ps.setInt(1, holdId);
+                ps.executeUpdate();
+            }
+        }
+
+        // frees the booking's bed; false when the booking is unknown or already discharged
+        boolean dischargeBooking(int bookingId) throws SQLException {
+            ensureRoomSchema();
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    int hospitalId;
+                    String roomType;
+                    try (PreparedStatement ps = c.prepareStatement("SELECT hospital_id, room_type, discharged_at FROM bookings WHERE id=? FOR UPDATE")) {
+                        ps.setInt(1, bookingId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (!rs.next() || rs.getTimestamp(3) != null) { c.rollback(); return false; }
+                            hospitalId = rs.getInt(1);
+                            roomType = rs.getString(2);
+                        }
+                    }
+                    try (PreparedStatement ps = c.prepareStatement("UPDATE bookings SET discharged_at = CURRENT_TIMESTAMP WHERE id=?")) {
+                        ps.setInt(1, bookingId);
+                        ps.executeUpdate();
+                    }
+                    if (hospitalId > 0 && roomType != null) {
+                        try (PreparedStatement ps = c.prepareStatement("UPDATE room_inventory SET occupied = occupied - 1 WHERE hospital_id=? AND room_type=? AND occupied > 0")) {
+                            ps.setInt(1, hospitalId);
+                            ps.setString(2, roomType);
+                            ps.executeUpdate();
+                        }
+                    }
+                    c.commit();
+                    return true;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        // rebuilds occupied from the bookings still in a bed, undoing any drift in the counters.
+        // One grouped, non-locking read finds the drifted rows; only those are rewritten, each in its
+        // own short transaction under its row lock so holds and bookings elsewhere wait at most one row.
+        void reconcileRoomInventory() throws SQLException {
+            ensureRoomSchema();
+            String counts = "SELECT hospital_id, room_type, COUNT(*) FROM bookings WHERE room_type IS NOT NULL AND discharged_at IS NULL GROUP BY hospital_id, room_type";
+            try (Connection c = connect()) {
+                Map<String, Integer> inBed = new HashMap<>();
+                try (PreparedStatement ps = c.prepareStatement(counts); ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) inBed.put(rs.getInt(1) + "|" + rs.getString(2), rs.getInt(3));
+                }
+                List<RoomStock> drifted = new ArrayList<>();
+                try (PreparedStatement ps = c.prepareStatement("SELECT hospital_id, room_type, occupied FROM room_inventory"); ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        RoomStock r = new RoomStock();
+                        r.hospitalId = rs.getInt(1);
+                        r.roomType = rs.getString(2);
+                        if (rs.getInt(3) != inBed.getOrDefault(r.hospitalId + "|" + r.roomType, 0)) drifted.add(r);
+                    }
+                }
+                for (RoomStock r : drifted) recountRoom(c, r.hospitalId, r.roomType);
+                try (PreparedStatement purge = c.prepareStatement("DELETE FROM room_holds WHERE expires_at <= NOW()")) {
+                    purge.executeUpdate();
+                }
+            }
+        }
+
+        // recount under the row lock: a booking racing the grouped read is either committed (and
+        // counted here) or still waiting for this lock
+        private void recountRoom(Connection c, int hospitalId, String roomType) throws SQLException {
+            c.setAutoCommit(false);
+            try {
+                if (lockRoomStock(c, hospitalId, roomType) != null) {
+                    int n = 0;
+                    String q = "SELECT COUNT(*) FROM bookings WHERE hospital_id=? AND room_type=? AND discharged_at IS NULL FOR SHARE";
+                    try (PreparedStatement ps = c.prepareStatement(q)) {
+                        ps.setInt(1, hospitalId);
+                        ps.setString(2, roomType);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) n = rs.getInt(1);
+                        }
+                    }
+                    try (PreparedStatement ps = c.prepareStatement("UPDATE room_inventory SET occupied=? WHERE hospital_id=? AND room_type=?")) {
+                        ps.setInt(1, n);
+                        ps.setInt(2, hospitalId);
+                        ps.setString(3, roomType);
+                        ps.executeUpdate();
+                    }
+                }
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+
+        List<RoomStock> listRoomInventory() throws SQLException {
+            List<RoomStock> out = new ArrayList<>();
+            String q = "SELECT ri.hospital_id, ri.room_type, ri.capacity, ri.occupied, (SELECT COUNT(*) FROM room_holds h "
+                    + "WHERE h.hospital_id = ri.hospital_id AND h.room_type = ri.room_type AND h.expires_at > NOW()) FROM room_inventory ri";
+            try (Connection c = connect(); PreparedStatement ps = c.prepareStatement(q); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    RoomStock r = new RoomStock();
+                    r.hospitalId = rs.getInt(1);
+                    r.roomType = rs.getString(2);
+                    r.capacity = rs.getInt(3);
+                    r.occupied = rs.getInt(4);
+                    r.held = rs.getInt(5);
+                    out.add(r);
+                }
+            }
+            return out;
+        }
+
+        // ---- archival (bookings / reviews)
+        // MySQL advisory lock owned by connection c until released or c closes; false when held elsewhere
+        boolean tryNamedLock(Connection c, String name) throws SQLException {
+            try (PreparedStatement ps = c.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+                ps.setString(1, name);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() && rs.getInt(1) == 1;
+                }
+            }
+        }
+
+        void releaseNamedLock(Connection c, String name) throws SQLException {
+            try (PreparedStatement ps = c.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                ps.setString(1, name);
+                ps.executeQuery().close();
+            }
+        }
+
+        void ensureArchiveTables() throws SQLException {
+            if (archiveReady) return;
+            try (Connection c = connect(); Statement st = c.createStatement()) {
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS bookings_archive LIKE bookings");
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS reviews_archive LIKE reviews");
+            }
+            archiveReady = true;
+        }
+
+        // column list shared by <table> and <table>_archive, in live-table order; fails loudly
+        // when the archive lags behind so no live column is dropped on the way
+        String archiveColumns(String table) throws SQLException {
+            try (Connection c = connect()) {
+                Set<String> archived = new HashSet<>();
+                for (String col : columnsOf(c, table + "_archive")) archived.add(col.toLowerCase());
+                StringBuilder out = new StringBuilder();
+                for (String col : columnsOf(c, table)) {
+                    if (!archived.contains(col.toLowerCase())) throw new SQLException(table + "_archive has no column " + col);
+                    out.append(out.length() == 0 ? "" : ", ").append('`').append(col).append('`');
+                }
+                return out.toString();
+            }
+        }
+
+        private List<String> columnsOf(Connection c, String table) throws SQLException {
+            List<String> out = new ArrayList<>();
+            try (ResultSet rs = c.getMetaData().getColumns(c.getCatalog(), null, table, null)) {
+                while (rs.next()) {
+                    // '_' is a pattern wildcard in getColumns
+                    if (table.equalsIgnoreCase(rs.getString("TABLE_NAME"))) out.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+            return out;
+        }
+
+        // moves the next id-ordered chunk of rows older than cutoff into <table>_archive;
+        // returns the highest id moved, or -1 when nothing is left after afterId.
+        // Ids rise with time and the date column is not indexed, so the chunk is read along the
+        // primary key and ends at the first row at or past the cutoff rather than probing the rest.
+        // Rows in range failing onlyIf (may be null) stay in the live table.
+        int archiveChunk(String table, String columns, String dateColumn, String onlyIf, Timestamp cutoff, int afterId, int limit) throws SQLException {
+            String scan = "SELECT id, " + dateColumn + " FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?";
+            String range = " WHERE id > ? AND id <= ? AND " + dateColumn + " < ?" + (onlyIf == null ? "" : " AND (" + onlyIf + ")");
+            try (Connection c = connect()) {
+                c.setAutoCommit(false);
+                try {
+                    int upTo = afterId;
+                    try (PreparedStatement ps = c.prepareStatement(scan)) {
+                        ps.setInt(1, afterId);
+                        ps.setInt(2, limit);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                Timestamp at = rs.getTimestamp(2);
+                                if (at != null && !at.before(cutoff)) break;
+                                upTo = rs.getInt(1);
+                            }
+                        }
+                    }
+                    if (upTo == afterId) { c.commit(); return -1; }
+                    try (PreparedStatement copy = c.prepareStatement("INSERT INTO " + table + "_archive (" + columns + ") SELECT " + columns + " FROM " + table + range);
+                         PreparedStatement del = c.prepareStatement("DELETE FROM " + table + range)) {
+                        for (PreparedStatement ps : new PreparedStatement[] {copy, del}) {
+                            ps.setInt(1, afterId);
+                            ps.setInt(2, upTo);
+                            ps.setTimestamp(3, cutoff);
+                            ps.executeUpdate();
+                        }
+                    }
+                    c.commit();
+                    return upTo;
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw e;
+                }
+            }
+        }
+
+        // live table first; only misses touch the archive
+        Booking findBooking(int bookingId) throws SQLException {
+            ensureRoomSchema();
+            String cols = "SELECT id, user_id, patient_id, hospital_id, doctor_id, ambulance_id, booking_date, room_type FROM ";
+            try (Connection c = connect()) {
+                Booking b = readBooking(c, cols + "bookings WHERE id=?", bookingId);
+                if (b != null) return b;
+                ensureArchiveTables();
+                b = readBooking(c, cols + "bookings_archive WHERE id=?", bookingId);
+                if (b != null) b.archived = true;
+                return b;
+            }
+        }
+
+        private Booking readBooking(Connection c, String q, int bookingId) throws SQLException {
+            try (PreparedStatement ps = c.prepareStatement(q)) {
+                ps.setInt(1, bookingId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return null;
+                    Booking b = new Booking();
+                    b.id = rs.getInt(1);
+                    b.userId = nullableInt(rs, 2);
+                    b.patientId = rs.getInt(3);
+                    b.hospitalId = nullableInt(rs, 4);
+                    b.doctorId = nullableInt(rs, 5);
+                    b.ambulanceId = nullableInt(rs, 6);
+                    b.bookingDate = rs.getTimestamp(7);
+                    b.roomType = rs.getString(8);
+                    return b;
+                }
+            }
+        }
+
+        private static Integer nullableInt(ResultSet rs, int col) throws SQLException {
+            int v = rs.getInt(col);
+            return rs.wasNull() ? null : v;
+        }
     } // end DBHelper
 
     // ---------- Models ----------
     private static class Ambulance {
         int id; String driverName; int driverAge; String driverGender; String driverMobile; String ambulanceNumber;
         String nurseName; int nurseAge; String nurseGender; String nurseMobile;
+        public String toString() { return ambulanceNumber + " - " + driverName; }
+    }
+    private static class AmbulanceSpot {
+        int id; double lat; double lon; boolean booked;
     }
     private static class Hospital {
         int id; String name; String location; String specialization;
         public String toString() { return name + " (" + specialization + ") - " + location; }
     }
+    private static class Booking {
+        int id; Integer userId; int patientId; Integer hospitalId; Integer doctorId; Integer ambulanceId;
+        Timestamp bookingDate; String roomType; boolean archived;
+    }
+    private static class RoomStock {
+        int hospitalId; String roomType; int capacity; int occupied; int held;
+    }
+    private static class Doctor {
+        int id; Integer hospitalId; String name; int age; String field; int experienceYears;
+        public String toString() { return name + " (" + field + ")"; }
+    }
+    private static class Appointment {
+        int id; int doctorId; LocalDateTime start; LocalDateTime end;
+    }
+
+    // ---------- Appointment scheduling ----------
+    // Appointments are SLOT_MINUTES long and start on the slot grid inside opening hours. Per doctor,
+    // booked time is kept as a TreeMap of merged busy blocks (start -> end, in local minutes), so a
+    // conflict check or a next-free-slot lookup is a floor/ceiling probe per day rather than a scan.
+    // Schedules load lazily per doctor over the booking horizon and reload from the DB once stale.
+    // A booked slot is held for HOLD_MS until the booking is paid; lapsed holds are purged every PURGE_MS.
+    private static class AppointmentScheduler {
+        static final int SLOT_MINUTES = 30;
+        private static final LocalTime OPENS = LocalTime.of(9, 0);
+        private static final LocalTime CLOSES = LocalTime.of(17, 0);
+        static final int HORIZON_DAYS = 120;
+        private static final long RELOAD_MS = 60_000;
+        private static final long HOLD_MS = 15 * 60_000;
+        private static final long PURGE_MS = 5 * 60_000;
+
+        private static class Schedule {
+            final TreeMap<Long, Long> busy = new TreeMap<>(); // guarded by this
+            long loadedAt = 0;                                // guarded by this
+        }
+
+        private final DBHelper db;
+        private final ConcurrentHashMap<Integer, Schedule> schedules = new ConcurrentHashMap<>();
+        private volatile long purgedAt = 0;
+
+        AppointmentScheduler(DBHelper db) { this.db = db; }
+
+        // first free slot starting at or after from; null when the horizon is fully booked
+        LocalDateTime nextFree(int doctorId, LocalDateTime from) throws SQLException {
+            Schedule s = schedule(doctorId);
+            LocalDateTime now = LocalDateTime.now();
+            long t = alignUp(minutes(from.isBefore(now) ? now : from));
+            long last = minutes(now.toLocalDate().plusDays(HORIZON_DAYS).atTime(CLOSES));
+            synchronized (s) {
+                while (t < last) {
+                    LocalDate day = fromMinutes(t).toLocalDate();
+                    long open = minutes(day.atTime(OPENS)), close = minutes(day.atTime(CLOSES));
+                    if (t < open) t = open;
+                    if (t + SLOT_MINUTES > close) { t = minutes(day.plusDays(1).atTime(OPENS)); continue; }
+                    Map.Entry<Long, Long> cover = s.busy.floorEntry(t);
+                    if (cover != null && cover.getValue() > t) { t = alignUp(cover.getValue()); continue; }
+                    Map.Entry<Long, Long> next = s.busy.higherEntry(t);
+                    if (next != null && next.getKey() < t + SLOT_MINUTES) { t = alignUp(next.getValue()); continue; }
+                    return fromMinutes(t);
+                }
+            }
+            return null;
+        }
+
+        // null when the slot has already started or is taken (here or at another terminal)
+        Appointment book(int doctorId, int patientId, LocalDateTime start) throws SQLException {
+            if (start.isBefore(LocalDateTime.now())) return null;
+            Schedule s = schedule(doctorId);
+            long st = minutes(start), en = st + SLOT_MINUTES;
+            synchronized (s) {
+                if (conflicts(s.busy, st, en)) return null;
+            }
+            LocalDateTime end = start.plusMinutes(SLOT_MINUTES);
+            Integer id = db.bookAppointment(doctorId, patientId, start, end, (int) (HOLD_MS / 1000));
+            synchronized (s) {
+                if (id == null) { s.loadedAt = 0; return null; } // our view was stale
+                addBusy(s.busy, st, en);
+            }
+            Appointment a = new Appointment();
+            a.id = id; a.doctorId = doctorId; a.start = start; a.end = end;
+            return a;
+        }
+
+        void cancel(Appointment a) throws SQLException {
+            db.cancelAppointment(a.id);
+            Schedule s = schedules.get(a.doctorId);
+            if (s == null) return;
+            synchronized (s) {
+                removeBusy(s.busy, minutes(a.start), minutes(a.end));
+            }
+        }
+
+        private Schedule schedule(int doctorId) throws SQLException {
+            if (System.currentTimeMillis() - purgedAt > PURGE_MS) {
+                purgedAt = System.currentTimeMillis();
+                db.purgeExpiredAppointments();
+            }
+            Schedule s = schedules.computeIfAbsent(doctorId, k -> new Schedule());
+            synchronized (s) {
+                if (System.currentTimeMillis() - s.loadedAt > RELOAD_MS) {
+                    LocalDate today = LocalDate.now();
+                    List<Appointment> booked = db.listAppointments(doctorId, today.atStartOfDay(), today.plusDays(HORIZON_DAYS + 1).atStartOfDay());
+                    s.busy.clear();
+                    for (Appointment a : booked) addBusy(s.busy, minutes(a.start), minutes(a.end));
+                    s.loadedAt = System.currentTimeMillis();
+                }
+            }
+            return s;
+        }
+
+        private static boolean conflicts(TreeMap<Long, Long> busy, long st, long en) {
+            Map.Entry<Long, Long> lo = busy.floorEntry(st);
+            if (lo != null && lo.getValue() > st) return true;
+            Map.Entry<Long, Long> hi = busy.ceilingEntry(st);
+            return hi != null && hi.getKey() < en;
+        }
+
+        // merges [st, en) with touching / overlapping blocks
+        private static void addBusy(TreeMap<Long, Long> busy, long st, long en) {
+            Map.Entry<Long, Long> lo = busy.floorEntry(st);
+            if (lo != null && lo.getValue() >= st) {
+                st = lo.getKey();
+                en = Math.max(en, lo.getValue());
+                busy.remove(lo.getKey());
+            }
+            Map.Entry<Long, Long> hi;
+            while ((hi = busy.ceilingEntry(st)) != null && hi.getKey() <= en) {
+                en = Math.max(en, hi.getValue());
+                busy.remove(hi.getKey());
+            }
+            busy.put(st, en);
+        }
+
+        // splits the block holding [st, en); a miss is left for the next reload
+        private static void removeBusy(TreeMap<Long, Long> busy, long st, long en) {
+            Map.Entry<Long, Long> b = busy.floorEntry(st);
+            if (b == null || b.getValue() < en) return;
+            busy.remove(b.getKey());
+            if (b.getKey() < st) busy.put(b.getKey(), st);
+            if (en < b.getValue()) busy.put(en, b.getValue());
+        }
+
+        private static long alignUp(long m) { return (m + SLOT_MINUTES - 1) / SLOT_MINUTES * SLOT_MINUTES; }
+        // local wall-clock minutes; DATETIME columns carry no zone either
+        private static long minutes(LocalDateTime t) { return t.toEpochSecond(ZoneOffset.UTC) / 60; }
+        private static LocalDateTime fromMinutes(long m) { return LocalDateTime.ofEpochSecond(m * 60, 0, ZoneOffset.UTC); }
+    }
+
+    // "AC Single - 5000" -> "AC Single"
+    private static String roomKey(String choice) {
+        int dash = choice.lastIndexOf(" - ");
+        return dash < 0 ? choice : choice.substring(0, dash);
+    }
+
+    // ---------- Bed inventory ----------
+    // Free beds per (hospital, room type) = capacity - occupied - live holds. This is a per-terminal
+    // cache: the striped locks only keep this process's buckets consistent (the UI thread and reloads),
+    // and a bucket with no free bed is refused without a DB round trip. Desks are separate processes;
+    // what serializes them is the room_inventory row lock taken by placeRoomHold and createBooking.
+    // Holds are rows in room_holds that lapse after HOLD_MS, so two terminals cannot hold the same
+    // last bed. Holds of other terminals are counted as of the last reload.
+    // Counters are reloaded from the DB once stale, and every RECONCILE_MS occupancy is recomputed
+    // from the bookings not yet discharged.
+    private static class BedInventory {
+        private static final int STRIPES = 32;
+        private static final long HOLD_MS = 10 * 60_000;
+        private static final long RELOAD_MS = 60_000;
+        private static final long RECONCILE_MS = 5 * 60_000;
+
+        static class Hold {
+            final int id; final int hospitalId; final String roomType; final long expiresAt;
+            Hold(int id, int hospitalId, String roomType, long expiresAt) {
+                this.id = id; this.hospitalId = hospitalId; this.roomType = roomType; this.expiresAt = expiresAt;
+            }
+        }
+
+        // guarded by the stripe for its key
+        private static class Bucket {
+            int capacity, occupied, heldElsewhere;
+            final List<Hold> holds = new ArrayList<>(); // this terminal's
+            int free(long now) {
+                holds.removeIf(h -> h.expiresAt <= now);
+                return capacity - occupied - heldElsewhere - holds.size();
+            }
+        }
+
+        private final DBHelper db;
+        private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+        private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+        private volatile long loadedAt = 0;
+        private long reconciledAt = 0; // guarded by this
+
+        BedInventory(DBHelper db) {
+            this.db = db;
+            for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+        }
+
+        int available(int hospitalId, String roomType) throws SQLException {
+            refreshIfStale();
+            String key = key(hospitalId, roomType);
+            Bucket b = buckets.get(key);
+            if (b == null) return 0;
+            ReentrantLock lock = stripe(key);
+            lock.lock();
+            try {
+                return Math.max(0, b.free(System.currentTimeMillis()));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // null when no bed of this type is free
+        Hold hold(int hospitalId, String roomType) throws SQLException {
+            refreshIfStale();
+            String key = key(hospitalId, roomType);
+            Bucket b = buckets.get(key);
+            if (b == null) return null;
+            ReentrantLock lock = stripe(key);
+            lock.lock();
+            try {
+                if (b.free(System.currentTimeMillis()) <= 0) return null;
+            } finally {
+                lock.unlock();
+            }
+            long now = System.currentTimeMillis();
+            Integer id = db.placeRoomHold(hospitalId, roomType, (int) (HOLD_MS / 1000));
+            if (id == null) { reload(); return null; } // another terminal got there first
+            Hold h = new Hold(id, hospitalId, roomType, now + HOLD_MS);
+            lock.lock();
+            try {
+                b.holds.add(h);
+            } finally {
+                lock.unlock();
+            }
+            return h;
+        }
+
+        boolean isLive(Hold h) {
+            return withHold(h, (b, found) -> found && h.expiresAt > System.currentTimeMillis());
+        }
+
+        void release(Hold h) throws SQLException {
+            if (h == null) return;
+            db.releaseRoomHold(h.id);
+            withHold(h, (b, found) -> { b.holds.remove(h); return found; });
+        }
+
+        // the booking is in the DB (which consumed the hold row): the held bed becomes occupied
+        void commit(Hold h) {
+            withHold(h, (b, found) -> { b.holds.remove(h); b.occupied++; return found; });
+        }
+
+        // pick up capacity / occupancy from the DB; live holds are kept
+        synchronized void reload() throws SQLException {
+            db.seedRoomInventory();
+            if (System.currentTimeMillis() - reconciledAt > RECONCILE_MS) {
+                db.reconcileRoomInventory();
+                reconciledAt = System.currentTimeMillis();
+            }
+            for (RoomStock r : db.listRoomInventory()) {
+                String key = key(r.hospitalId, r.roomType);
+                Bucket b = buckets.computeIfAbsent(key, k -> new Bucket());
+                ReentrantLock lock = stripe(key);
+                lock.lock();
+                try {
+                    b.capacity = r.capacity;
+                    b.occupied = r.occupied;
+                    b.free(System.currentTimeMillis()); // drop lapsed local holds before subtracting ours
+                    b.heldElsewhere = Math.max(0, r.held - b.holds.size());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            loadedAt = System.currentTimeMillis();
+        }
+
+        private void refreshIfStale() throws SQLException {
+            if (System.currentTimeMillis() - loadedAt > RELOAD_MS) reload();
+        }
+
+        private interface HoldOp { boolean apply(Bucket b, boolean found); }
+
+        private boolean withHold(Hold h, HoldOp op) {
+            if (h == null) return false;
+            String key = key(h.hospitalId, h.roomType);
+            Bucket b = buckets.get(key);
+            if (b == null) return false;
+            ReentrantLock lock = stripe(key);
+            lock.lock();
+            try {
+                return op.apply(b, b.holds.contains(h));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private ReentrantLock stripe(String key) {
+            return stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+        }
+
+        private static String key(int hospitalId, String roomType) { return hospitalId + "|" + roomType; }
+    }
+
+    // ---------- Archival ----------
+    // Rows older than the retention window move to *_archive in small id-ordered chunks, one
+    // short transaction each. After every chunk the thread sleeps at least as long as the chunk
+    // took, so it holds row locks for no more than about half the time.
+    private static class Archiver {
+        private static final int RETENTION_DAYS = 365;
+        private static final int CHUNK = 500;
+        private static final long MIN_PAUSE_MS = 200;
+        private static final long PERIOD_MINUTES = 6 * 60;
+        private static final String LOCK_NAME = "shm_db.archiver";
+
+        private final DBHelper db;
+
+        Archiver(DBHelper db) { this.db = db; }
+
+        void start() {
+            ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "archiver");
+                t.setDaemon(true);
+                return t;
+            });
+            ex.scheduleWithFixedDelay(this::runQuietly, 1, PERIOD_MINUTES, TimeUnit.MINUTES);
+        }
+
+        private void runQuietly() {
+            try {
+                runOnce();
+            } catch (SQLException e) {
+                // the next period picks up where this stopped; schema drift keeps failing until fixed
+                System.err.println("archiver: run stopped, retrying in " + PERIOD_MINUTES + " min: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // every terminal schedules a run; only the one holding the advisory lock does the work,
+        // so archivers never collide on the same chunk
+        void runOnce() throws SQLException, InterruptedException {
+            try (Connection lock = db.connect()) {
+                if (!db.tryNamedLock(lock, LOCK_NAME)) return;
+                try {
+                    db.ensureRoomSchema();
+                    db.ensureArchiveTables();
+                    Timestamp cutoff = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS));
+                    // a patient still in a bed keeps the booking live: bed counts are rebuilt from live bookings
+                    archive("bookings", "booking_date", "room_type IS NULL OR discharged_at IS NOT NULL", cutoff);
+                    archive("reviews", "created_at", null, cutoff);
+                } finally {
+                    db.releaseNamedLock(lock, LOCK_NAME);
+                }
+            }
+        }
+
+        private void archive(String table, String dateColumn, String onlyIf, Timestamp cutoff) throws SQLException, InterruptedException {
+            String columns = db.archiveColumns(table);
+            int after = 0;
+            while (true) {
+                long t0 = System.nanoTime();
+                int upTo = db.archiveChunk(table, columns, dateColumn, onlyIf, cutoff, after, CHUNK);
+                if (upTo < 0) return;
+                after = upTo;
+                long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+                Thread.sleep(Math.max(MIN_PAUSE_MS, took));
+            }
+        }
+    }
+
+    // ---------- Ambulance dispatch ----------
+    // Free ambulances live in a uniform lat/lon grid; a dispatch walks rings of cells outward
+    // from the pickup, reserves the nearest few in memory and lets the DB claim one of them.
+    // The DB stays the authority across terminals; the grid is reconciled from it periodically,
+    // and when the grid runs dry the DB is asked for the nearest free row directly.
+    private static class AmbulanceDispatcher {
+        private static final double CELL_DEG = 0.02;   // ~2 km cells
+        private static final double KM_PER_DEG = 111.2;
+        private static final int MAX_RING = 25;        // past this, fall back to a full scan
+        private static final int BATCH = 8;            // candidates offered to one DB claim
+        private static final int MAX_ATTEMPTS = 4;
+        private static final long RELOAD_MS = 30_000;
+
+        private static class Vehicle {
+            final int id;
+            double lat, lon;         // guarded by this
+            volatile boolean free;   // written under this
+            Vehicle(int id) { this.id = id; }
+        }
+
+        private static class Candidate {
+            final Vehicle v; final double km;
+            Candidate(Vehicle v, double km) { this.v = v; this.km = km; }
+        }
+
+        private final DBHelper db;
+        private final ConcurrentHashMap<Integer, Vehicle> vehicles = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, Set<Vehicle>> cells = new ConcurrentHashMap<>();
+        private volatile long loadedAt = 0;
+
+        AmbulanceDispatcher(DBHelper db) { this.db = db; }
+
+        // returns the claimed ambulance id, or null when the DB has no free vehicle
+        Integer dispatch(double lat, double lon) throws SQLException {
+            if (System.currentTimeMillis() - loadedAt > RELOAD_MS) reload();
+            boolean reloaded = false;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                List<Candidate> near = nearestFree(lat, lon, BATCH);
+                if (near.isEmpty()) break;
+                List<Vehicle> reserved = new ArrayList<>();
+                List<Integer> ids = new ArrayList<>();
+                for (Candidate cand : near) {
+                    if (reserve(cand.v)) { reserved.add(cand.v); ids.add(cand.v.id); }
+                }
+                if (reserved.isEmpty()) continue; // raced with another dispatch in this process
+                Integer claimed;
+                try {
+                    claimed = db.claimAmbulance(ids);
+                } catch (SQLException e) {
+                    for (Vehicle v : reserved) makeFree(v);
+                    throw e;
+                }
+                if (claimed == null) {
+                    // all taken by other terminals: the grid is behind, catch up once before retrying
+                    if (!reloaded) { reload(); reloaded = true; }
+                    continue;
+                }
+                // candidates ahead of the claimed one were busy elsewhere, the rest go back to the pool
+                boolean after = false;
+                for (Vehicle v : reserved) {
+                    if (after) makeFree(v);
+                    if (v.id == claimed) after = true;
+                }
+                return claimed;
+            }
+            // the grid found nothing claimable; let the DB pick the nearest free row itself
+            Integer claimed = db.claimNearestAmbulance(lat, lon);
+            if (claimed != null) {
+                Vehicle v = vehicles.get(claimed);
+                if (v != null) reserve(v); else loadedAt = 0;
+            }
+            return claimed;
+        }
+
+        void release(int aid) throws SQLException {
+            db.releaseAmbulance(aid);
+            Vehicle v = vehicles.get(aid);
+            if (v != null) makeFree(v);
+        }
+
+        // reconcile positions and availability with the DB
+        synchronized void reload() throws SQLException {
+            if (loadedAt == 0) db.ensureAmbulances();
+            Set<Integer> seen = new HashSet<>();
+            for (AmbulanceSpot a : db.listAmbulanceSpots()) {
+                seen.add(a.id);
+                reindex(vehicles.computeIfAbsent(a.id, Vehicle::new), a.lat, a.lon, !a.booked);
+            }
+            for (Vehicle v : vehicles.values()) {
+                if (!seen.contains(v.id)) { reserve(v); vehicles.remove(v.id); }
+            }
+            loadedAt = System.currentTimeMillis();
+        }
+
+        List<Candidate> nearestFree(double lat, double lon, int k) {
+            PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble((Candidate c) -> c.km).reversed());
+            int cx = cellOf(lon), cy = cellOf(lat);
+            double cellKm = CELL_DEG * KM_PER_DEG * Math.cos(Math.toRadians(lat));
+            boolean settled = false;
+            for (int r = 0; ; r++) {
+                // every cell in ring r is at least (r-1) cells away from the pickup
+                if (best.size() == k && (r - 1) * cellKm >= best.peek().km) { settled = true; break; }
+                if (r > MAX_RING) break;
+                for (int dy = -r; dy <= r; dy++) {
+                    int step = (dy == -r || dy == r) ? 1 : Math.max(1, 2 * r);
+                    for (int dx = -r; dx <= r; dx += step) {
+                        Set<Vehicle> cell = cells.get(key(cx + dx, cy + dy));
+                        if (cell != null) for (Vehicle v : cell) offer(best, k, v, lat, lon);
+                    }
+                }
+            }
+            if (!settled) {
+                // sparse fleet: the ring walk could not prove the nearest, scan everything
+                best.clear();
+                for (Vehicle v : vehicles.values()) if (v.free) offer(best, k, v, lat, lon);
+            }
+            List<Candidate> out = new ArrayList<>(best);
+            out.sort(Comparator.comparingDouble(c -> c.km));
+            return out;
+        }
+
+        private void offer(PriorityQueue<Candidate> best, int k, Vehicle v, double lat, double lon) {
+            double km;
+            synchronized (v) {
+                if (!v.free) return;
+                km = distanceKm(lat, lon, v.lat, v.lon);
+            }
+            if (best.size() < k) best.add(new Candidate(v, km));
+            else if (km < best.peek().km) { best.poll(); best.add(new Candidate(v, km)); }
+        }
+
+        private boolean reserve(Vehicle v) {
+            synchronized (v) {
+                if (!v.free) return false;
+                v.free = false;
+                unplace(v);
+                return true;
+            }
+        }
+
+        private void makeFree(Vehicle v) {
+            synchronized (v) {
+                if (v.free) return;
+                v.free = true;
+                place(v);
+            }
+        }
+
+        private void reindex(Vehicle v, double lat, double lon, boolean free) {
+            synchronized (v) {
+                if (v.free) unplace(v);
+                v.lat = lat; v.lon = lon; v.free = free;
+                if (free) place(v);
+            }
+        }
+
+        private void place(Vehicle v) {
+            cells.computeIfAbsent(key(cellOf(v.lon), cellOf(v.lat)), k -> ConcurrentHashMap.newKeySet()).add(v);
+        }
+
+        private void unplace(Vehicle v) {
+            Set<Vehicle> cell = cells.get(key(cellOf(v.lon), cellOf(v.lat)));
+            if (cell != null) cell.remove(v);
+        }
+
+        private static int cellOf(double deg) { return (int) Math.floor(deg / CELL_DEG); }
+        private static long key(int cx, int cy) { return ((long) cx << 32) | (cy & 0xffffffffL); }
+
+        static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+            double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2)) * KM_PER_DEG;
+            double y = (lat2 - lat1) * KM_PER_DEG;
+            return Math.sqrt(x * x + y * y);
+        }
+    }
 
     // ---------------- UI Panels ----------------
 
@@ -408,7 +1674,7 @@ public class SpecializedHospitalManagementClean extends JFrame {
 
     // ---- PATIENT
     private class PatientPanel extends BackgroundPanel {
-        JTextField tfName, tfAge, tfAddress, tfMobile, tfGName, tfGRel, tfGMobile, tfDisease;
+        JTextField tfName, tfAge, tfAddress, tfMobile, tfGName, tfGRel, tfGMobile, tfDisease, tfPickup;
         JCheckBox cbEmergency, cbAmb;
         PatientPanel() {
             super(bgFormImg);
@@ -433,9 +1699,13 @@ public class SpecializedHospitalManagementClean extends JFrame {
 
             cbEmergency = new JCheckBox("Emergency"); cbEmergency.setBounds(180, startY, 140, 24); add(cbEmergency);
             cbAmb = new JCheckBox("Require Ambulance"); cbAmb.setBounds(340, startY, 180, 24); add(cbAmb);
+            JLabel lblPickup = new JLabel("Pickup (lat, lon):"); lblPickup.setBounds(530, startY, 120, 24); add(lblPickup);
+            tfPickup = new JTextField(); tfPickup.setBounds(650, startY, 210, 26); add(tfPickup);
 
             JButton btnSave = new JButton("Verify & Continue"); btnSave.setBounds(740, startY+40, 200, 36); add(btnSave);
             JButton btnLogout = new JButton("Logout"); btnLogout.setBounds(600, startY+40, 120, 36); add(btnLogout);
+            JButton btnDesk = new JButton("Front Desk"); btnDesk.setBounds(460, startY+40, 120, 36); add(btnDesk);
+            btnDesk.addActionListener(e -> cardLayout.show(root, "frontdesk"));
 
             btnSave.addActionListener(e -> {
                 String name = tfName.getText().trim();
@@ -455,6 +1725,8 @@ public class SpecializedHospitalManagementClean extends JFrame {
                 boolean ambulanceNeeded = cbAmb.isSelected();
 
                 if (name.isEmpty()) { showDialog("Enter patient name", "Error", JOptionPane.ERROR_MESSAGE); return; }
+                double[] pickup = ambulanceNeeded ? parsePickup(tfPickup.getText()) : null;
+                if (ambulanceNeeded && pickup == null) { showDialog("Pickup must be \"latitude, longitude\"", "Error", JOptionPane.ERROR_MESSAGE); return; }
 
                 try {
                     int pid = db.insertPatient(name, age, address, mobile, gname, grel, gmobile, disease, emergency, ambulanceNeeded);
@@ -465,7 +1737,8 @@ public class SpecializedHospitalManagementClean extends JFrame {
                     if (emergency && ambulanceNeeded) {
                         int r = JOptionPane.showConfirmDialog(this, "Emergency detected. Request ambulance now?", "Emergency", JOptionPane.YES_NO_OPTION);
                         if (r == JOptionPane.YES_OPTION) {
-                            Integer aid = db.ensureAndGetAmbulance();
+                            releaseAmbulance(); // a re-submitted form must not hold two vehicles
+                            Integer aid = dispatcher.dispatch(pickup[0], pickup[1]);
                             if (aid != null) {
                                 bookedAmbulanceId = aid;
                                 Ambulance a = db.getAmbulance(aid);
@@ -492,15 +1765,35 @@ public class SpecializedHospitalManagementClean extends JFrame {
             btnLogout.addActionListener(e -> {
                 int r = JOptionPane.showConfirmDialog(this, "Logout and return to Login?", "Confirm", JOptionPane.YES_NO_OPTION);
                 if (r == JOptionPane.YES_OPTION) {
+                    bookedAmbulanceId = null; // still on its trip; completed from the Front Desk
+                    releaseRoomHold();
+                    releaseAppointment();
+                    selectedHospitalId = -1;
+                    selectedDoctorId = -1;
                     loggedUserId = -1;
                     lastPatientId = -1;
-                    bookedAmbulanceId = null;
                     lastBookingId = null;
                     cardLayout.show(root, "login");
                 }
             });
         }
 
+        // blank means the default base; null means unparseable
+        private double[] parsePickup(String s) {
+            String t = s.trim();
+            if (t.isEmpty()) return new double[] {DEFAULT_LAT, DEFAULT_LON};
+            String[] parts = t.split(",");
+            if (parts.length != 2) return null;
+            try {
+                double lat = Double.parseDouble(parts[0].trim());
+                double lon = Double.parseDouble(parts[1].trim());
+                if (!Double.isFinite(lat) || !Double.isFinite(lon) || Math.abs(lat) > 90 || Math.abs(lon) > 180) return null;
+                return new double[] {lat, lon};
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
         private JTextField addField(String labelText, int x, int y) {
             addLabel(labelText, x, y);
             JTextField tf = new JTextField(); tf.setBounds(x + 160, y, 520, 26); add(tf); return tf;
@@ -538,10 +1831,11 @@ public class SpecializedHospitalManagementClean extends JFrame {
             choose.addActionListener(e -> {
                 Hospital h = (Hospital) combo.getSelectedItem();
                 if (h == null) { showDialog("Select a hospital", "Info", JOptionPane.WARNING_MESSAGE); return; }
+                selectedHospitalId = h.id;
                 showDialog("Hospital selected: " + h.name, "Selected", JOptionPane.INFORMATION_MESSAGE);
                 cardLayout.show(root, "doctor");
             });
-            skip.addActionListener(e -> cardLayout.show(root, "doctor"));
+            skip.addActionListener(e -> { selectedHospitalId = -1; cardLayout.show(root, "doctor"); });
 
             loadHospitals();
         }
@@ -559,32 +1853,166 @@ public class SpecializedHospitalManagementClean extends JFrame {
 
     // ---- Doctor panel ----
     private class DoctorPanel extends BackgroundPanel {
+        final DateTimeFormatter fmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+        JComboBox<Doctor> cbDoctor;
+        JTextArea ta;
+        JTextField tfFrom;
+        JLabel lblSlot;
+        LocalDateTime offered; // slot currently shown for the selected doctor
+        boolean loading;       // refilling the combo fires its listener; loadDoctors refreshes once at the end
         DoctorPanel() {
             super(bgHospImg);
             JLabel title = new JLabel("Doctor Details", SwingConstants.CENTER); title.setFont(new Font("SansSerif", Font.BOLD, 26)); title.setForeground(Color.WHITE); title.setBounds(0,30,1100,40); add(title);
-            JTextArea ta = new JTextArea(); ta.setBounds(200,120,700,360); ta.setOpaque(false); ta.setForeground(Color.WHITE);
-            ta.setText("Primary Doctor: Dr. A. Kumar\nAge: 45\nField: Cardiology\nExperience: 18 years\n\nSecondary Doctor: Dr. M. Sharma\nAge: 39\nField: General Medicine\nExperience: 12 years\n\n(Placeholders for photos / videos / reviews)");
-            add(ta);
-            JButton done = new JButton("Done & Continue"); done.setBounds(470,500,160,36); add(done);
-            done.addActionListener(e -> { showDialog("Doctor verified", "Verified", JOptionPane.INFORMATION_MESSAGE); cardLayout.show(root, "wardfood"); });
+            JLabel l1 = new JLabel("Doctor:"); l1.setForeground(Color.WHITE); l1.setBounds(200, 110, 90, 24); add(l1);
+            cbDoctor = new JComboBox<>(); cbDoctor.setBounds(300,110,600,26); add(cbDoctor);
+            ta = new JTextArea(); ta.setEditable(false); ta.setBounds(200,160,700,150); ta.setOpaque(false); ta.setForeground(Color.WHITE); add(ta);
+
+            JLabel l2 = new JLabel("Earliest (yyyy-MM-dd HH:mm):"); l2.setForeground(Color.WHITE); l2.setBounds(200, 330, 200, 24); add(l2);
+            tfFrom = new JTextField(); tfFrom.setBounds(410,330,160,26); add(tfFrom);
+            JButton find = new JButton("Find Slot"); find.setBounds(590,330,120,26); add(find);
+            lblSlot = new JLabel(); lblSlot.setFont(new Font("SansSerif", Font.BOLD, 16)); lblSlot.setForeground(Color.WHITE); lblSlot.setBounds(200,380,700,26); add(lblSlot);
+
+            JButton done = new JButton("Book Slot & Continue"); done.setBounds(400,500,200,36); add(done);
+            JButton skip = new JButton("Skip"); skip.setBounds(620,500,120,36); add(skip);
+
+            cbDoctor.addActionListener(e -> { if (!loading) { showDoctor(); findSlot(); } });
+            find.addActionListener(e -> findSlot());
+            done.addActionListener(e -> {
+                Doctor d = (Doctor) cbDoctor.getSelectedItem();
+                if (d == null) { showDialog("Select a doctor", "Info", JOptionPane.WARNING_MESSAGE); return; }
+                if (offered == null) { showDialog("No free slot for this doctor", "Info", JOptionPane.WARNING_MESSAGE); return; }
+                if (offered.isBefore(LocalDateTime.now())) {
+                    showDialog("That slot has already passed. Showing the next free one.", "Expired", JOptionPane.WARNING_MESSAGE);
+                    findSlot();
+                    return;
+                }
+                if (appointment != null && appointment.doctorId == d.id && appointment.start.equals(offered)) {
+                    cardLayout.show(root, "wardfood"); // already holding this slot
+                    return;
+                }
+                try {
+                    Appointment a = scheduler.book(d.id, lastPatientId, offered);
+                    if (a == null) {
+                        showDialog("That slot was just taken. Showing the next free one.", "Taken", JOptionPane.WARNING_MESSAGE);
+                        findSlot();
+                        return;
+                    }
+                    releaseAppointment(); // the new slot replaces the earlier one only once it is ours
+                    appointment = a;
+                    selectedDoctorId = d.id;
+                    showDialog("Appointment booked with " + d.name + " at " + a.start.format(fmt), "Booked", JOptionPane.INFORMATION_MESSAGE);
+                    cardLayout.show(root, "wardfood");
+                } catch (SQLException ex) {
+                    showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+            skip.addActionListener(e -> {
+                releaseAppointment();
+                selectedDoctorId = -1;
+                cardLayout.show(root, "wardfood");
+            });
+            addComponentListener(new ComponentAdapter() {
+                @Override public void componentShown(ComponentEvent e) { loadDoctors(); }
+            });
+        }
+
+        private void loadDoctors() {
+            loading = true;
+            try {
+                cbDoctor.removeAllItems();
+                db.ensureDoctors();
+                for (Doctor d : db.listDoctors(currentHospitalId())) cbDoctor.addItem(d);
+            } catch (SQLException ex) {
+                showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+            } finally {
+                loading = false;
+            }
+            showDoctor();
+            findSlot();
+        }
+
+        private void showDoctor() {
+            Doctor d = (Doctor) cbDoctor.getSelectedItem();
+            ta.setText(d == null ? "No doctors listed for this hospital."
+                    : d.name + "\nAge: " + d.age + "\nField: " + d.field + "\nExperience: " + d.experienceYears + " years\n\n(Placeholders for photos / videos / reviews)");
+        }
+
+        private void findSlot() {
+            offered = null;
+            Doctor d = (Doctor) cbDoctor.getSelectedItem();
+            if (d == null) { lblSlot.setText(""); return; }
+            LocalDateTime from = LocalDateTime.now();
+            String t = tfFrom.getText().trim();
+            if (!t.isEmpty()) {
+                try {
+                    from = LocalDateTime.parse(t, fmt);
+                } catch (DateTimeParseException ex) {
+                    showDialog("Use the format yyyy-MM-dd HH:mm", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+            }
+            if (from.toLocalDate().isAfter(LocalDate.now().plusDays(AppointmentScheduler.HORIZON_DAYS))) {
+                lblSlot.setText("Outside the booking window (next " + AppointmentScheduler.HORIZON_DAYS + " days)");
+                return;
+            }
+            try {
+                offered = scheduler.nextFree(d.id, from);
+                lblSlot.setText(offered == null ? "Fully booked" : "Next free slot: " + offered.format(fmt)
+                        + " (" + AppointmentScheduler.SLOT_MINUTES + " min)");
+            } catch (SQLException ex) {
+                lblSlot.setText("Schedule unavailable: " + ex.getMessage());
+            }
         }
     }
 
     // ---- Ward & Food ----
     private class WardFoodPanel extends BackgroundPanel {
         JComboBox<String> cbRoom, cbFood;
+        JLabel lblFree;
         WardFoodPanel() {
             super(bgFormImg);
             JLabel title = new JLabel("Ward & Food Preferences", SwingConstants.CENTER); title.setFont(new Font("SansSerif", Font.BOLD, 26)); title.setForeground(Color.WHITE); title.setBounds(0, 20, 1100, 40); add(title);
 
             JLabel l1 = new JLabel("Room Type:"); l1.setBounds(220, 140, 120, 24); add(l1);
-            cbRoom = new JComboBox<>(new String[] {"AC Single - 5000","Non-AC Single - 3000","2-Sharing - 3000","4-Sharing - 1500"}); cbRoom.setBounds(360,140,420,26); add(cbRoom);
+            cbRoom = new JComboBox<>(ROOM_CHOICES); cbRoom.setBounds(360,140,420,26); add(cbRoom);
+            lblFree = new JLabel(); lblFree.setForeground(Color.WHITE); lblFree.setBounds(800, 140, 200, 24); add(lblFree);
 
             JLabel l2 = new JLabel("Food Plan:"); l2.setBounds(220, 190, 120, 24); add(l2);
             cbFood = new JComboBox<>(new String[] {"Standard - 300","Protein - 500","Vegetarian - 250","Special - 800"}); cbFood.setBounds(360,190,300,26); add(cbFood);
 
             JButton next = new JButton("Continue to Billing"); next.setBounds(460, 260, 200, 36); add(next);
-            next.addActionListener(e -> cardLayout.show(root, "billing"));
+            next.addActionListener(e -> {
+                String room = roomKey((String) cbRoom.getSelectedItem());
+                try {
+                    int hid = currentHospitalId();
+                    releaseRoomHold();
+                    if (hid > 0) {
+                        roomHold = inventory.hold(hid, room);
+                        if (roomHold == null) {
+                            showDialog("No " + room + " beds free at this hospital", "Full", JOptionPane.WARNING_MESSAGE);
+                            refreshFree();
+                            return;
+                        }
+                    }
+                    cardLayout.show(root, "billing");
+                } catch (SQLException ex) {
+                    showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+
+            cbRoom.addActionListener(e -> refreshFree());
+            addComponentListener(new ComponentAdapter() {
+                @Override public void componentShown(ComponentEvent e) { refreshFree(); }
+            });
+        }
+
+        private void refreshFree() {
+            try {
+                int hid = currentHospitalId();
+                lblFree.setText(hid > 0 ? inventory.available(hid, roomKey((String) cbRoom.getSelectedItem())) + " bed(s) free" : "");
+            } catch (SQLException ex) {
+                lblFree.setText("availability unknown");
+            }
         }
     }
 
@@ -601,7 +2029,7 @@ public class SpecializedHospitalManagementClean extends JFrame {
             tfDoctorFee = new JTextField("1500"); tfDoctorFee.setBounds(360,110,120,26); add(tfDoctorFee);
             add(new JLabel("Doctor Fee (₹):")).setBounds(240,110,120,24);
 
-            cbRoom = new JComboBox<>(new String[] {"AC Single - 5000","Non-AC Single - 3000","2-Sharing - 3000","4-Sharing - 1500"}); cbRoom.setBounds(360,150,300,26); add(cbRoom);
+            cbRoom = new JComboBox<>(ROOM_CHOICES); cbRoom.setBounds(360,150,300,26); add(cbRoom);
             add(new JLabel("Room Type:")).setBounds(240,150,120,24);
 
             cbFood = new JComboBox<>(new String[] {"Standard - 300","Protein - 500","Vegetarian - 250","Special - 800"}); cbFood.setBounds(360,190,240,26); add(cbFood);
@@ -622,11 +2050,39 @@ public class SpecializedHospitalManagementClean extends JFrame {
                 int response = JOptionPane.showConfirmDialog(this, "Proceed to pay " + lblTotal.getText() + " ?", "Confirm Payment", JOptionPane.YES_NO_OPTION);
                 if (response == JOptionPane.YES_OPTION) {
                     try {
-                        // get first hospital as demo if exists
-                        List<Hospital> list = db.listHospitals();
-                        int hospitalId = list.isEmpty() ? 0 : list.get(0).id;
+                        int hospitalId = currentHospitalId();
+                        String roomType = roomKey((String) cbRoom.getSelectedItem());
+                        if (roomHold != null && !inventory.isLive(roomHold)) {
+                            roomHold = inventory.hold(roomHold.hospitalId, roomHold.roomType);
+                            if (roomHold == null) {
+                                showDialog("Room hold expired and no " + roomType + " bed is free now", "Full", JOptionPane.WARNING_MESSAGE);
+                                cardLayout.show(root, "wardfood");
+                                return;
+                            }
+                        }
+                        if (roomHold != null) hospitalId = roomHold.hospitalId;
                         double total = parseMoney(lblTotal.getText());
-                        int bookingId = db.createBooking(loggedUserId, lastPatientId, hospitalId, bookedAmbulanceId, null, null, total);
+                        int bookingId = db.createBooking(loggedUserId, lastPatientId, hospitalId,
+                                selectedDoctorId > 0 ? selectedDoctorId : null, appointment == null ? null : appointment.id,
+                                bookedAmbulanceId, roomType, roomHold == null ? null : roomHold.id, null, total);
+                        if (bookingId == -2) {
+                            // held too long: the slot may have gone to another desk; the bed hold is kept
+                            releaseAppointment();
+                            showDialog("The appointment hold has expired. Book the slot again.", "Expired", JOptionPane.WARNING_MESSAGE);
+                            cardLayout.show(root, "doctor");
+                            return;
+                        }
+                        if (bookingId <= 0) {
+                            // another desk took the last bed between our hold and the DB write
+                            releaseRoomHold();
+                            inventory.reload();
+                            showDialog("The last " + roomType + " bed was just taken. Choose another room.", "Full", JOptionPane.WARNING_MESSAGE);
+                            cardLayout.show(root, "wardfood");
+                            return;
+                        }
+                        inventory.commit(roomHold);
+                        roomHold = null;
+                        appointment = null; // confirmed with the booking: the slot stays booked
                         lastBookingId = bookingId;
                         showDialog("Payment successful. Booking ID: " + bookingId, "Paid", JOptionPane.INFORMATION_MESSAGE);
                         cardLayout.show(root, "summary");
@@ -637,6 +2093,18 @@ public class SpecializedHospitalManagementClean extends JFrame {
             });
 
             btnBack.addActionListener(e -> cardLayout.show(root, "wardfood"));
+
+            // the room was chosen (and held) on the ward page
+            addComponentListener(new ComponentAdapter() {
+                @Override public void componentShown(ComponentEvent e) {
+                    if (roomHold != null) {
+                        for (String choice : ROOM_CHOICES) {
+                            if (roomKey(choice).equals(roomHold.roomType)) cbRoom.setSelectedItem(choice);
+                        }
+                    }
+                    cbRoom.setEnabled(roomHold == null);
+                }
+            });
         }
 
         private void calculateTotal() {
@@ -665,7 +2133,10 @@ public class SpecializedHospitalManagementClean extends JFrame {
         SummaryPanel() {
             super(bgFormImg);
             JLabel title = new JLabel("Summary & Reviews", SwingConstants.CENTER); title.setFont(new Font("SansSerif", Font.BOLD, 26)); title.setForeground(Color.WHITE); title.setBounds(0,20,1100,40); add(title);
-            JTextArea ta = new JTextArea(); ta.setEditable(false); ta.setBounds(150, 100, 800, 350); ta.setText("Summary:\nPatient ID: " + lastPatientId + "\nBooking ID: " + (lastBookingId == null ? "N/A" : lastBookingId) + "\n\nPhotos/Video placeholders."); add(ta);
+            JTextArea ta = new JTextArea(); ta.setEditable(false); ta.setBounds(150, 100, 800, 350); add(ta);
+            addComponentListener(new ComponentAdapter() {
+                @Override public void componentShown(ComponentEvent e) { ta.setText(summaryText()); }
+            });
             JComboBox<Integer> stars = new JComboBox<>(new Integer[]{1,2,3,4,5}); stars.setBounds(420,470,80,28); add(stars);
             JTextField tfReview = new JTextField(); tfReview.setBounds(520,470,430,28); add(tfReview);
             JButton btnSubmit = new JButton("Submit Review"); btnSubmit.setBounds(420, 520, 150, 34); add(btnSubmit);
@@ -683,14 +2154,158 @@ public class SpecializedHospitalManagementClean extends JFrame {
             });
 
             btnFinish.addActionListener(e -> {
-                loggedUserId = -1; lastPatientId = -1; bookedAmbulanceId = null; lastBookingId = null;
+                bookedAmbulanceId = null; // still on its trip; completed from the Front Desk
+                releaseRoomHold();
+                releaseAppointment();
+                loggedUserId = -1; lastPatientId = -1; lastBookingId = null; selectedHospitalId = -1; selectedDoctorId = -1;
                 cardLayout.show(root, "login");
             });
         }
+
+        private String summaryText() {
+            StringBuilder sb = new StringBuilder("Summary:\nPatient ID: " + lastPatientId + "\nBooking ID: " + (lastBookingId == null ? "N/A" : lastBookingId));
+            if (lastBookingId != null) {
+                try {
+                    Booking b = db.findBooking(lastBookingId);
+                    if (b != null) {
+                        sb.append("\nBooked on: ").append(b.bookingDate).append(b.archived ? " (archived)" : "");
+                        sb.append("\nHospital ID: ").append(b.hospitalId == null ? "N/A" : b.hospitalId);
+                        sb.append("\nDoctor ID: ").append(b.doctorId == null ? "N/A" : b.doctorId);
+                        sb.append("\nRoom: ").append(b.roomType == null ? "N/A" : b.roomType);
+                        sb.append("\nAmbulance ID: ").append(b.ambulanceId == null ? "N/A" : b.ambulanceId);
+                    }
+                } catch (SQLException ex) {
+                    sb.append("\n(booking details unavailable: ").append(ex.getMessage()).append(")");
+                }
+            }
+            return sb.append("\n\nPhotos/Video placeholders.").toString();
+        }
+    }
+
+    // ---- Front desk: work that outlives one patient's flow ----
+    private class FrontDeskPanel extends BackgroundPanel {
+        JComboBox<Ambulance> cbTrips;
+        FrontDeskPanel() {
+            super(bgFormImg);
+            JLabel title = new JLabel("Front Desk", SwingConstants.CENTER); title.setFont(new Font("SansSerif", Font.BOLD, 26)); title.setForeground(Color.WHITE); title.setBounds(0, 20, 1100, 40); add(title);
+
+            JLabel l1 = new JLabel("Ambulances on trips:"); l1.setForeground(Color.WHITE); l1.setBounds(200, 120, 150, 24); add(l1);
+            cbTrips = new JComboBox<>(); cbTrips.setBounds(360, 120, 320, 26); add(cbTrips);
+            JButton btnRefresh = new JButton("Refresh"); btnRefresh.setBounds(700, 120, 100, 26); add(btnRefresh);
+            JButton btnComplete = new JButton("Trip Complete"); btnComplete.setBounds(820, 120, 140, 26); add(btnComplete);
+
+            JLabel l2 = new JLabel("Booking ID:"); l2.setForeground(Color.WHITE); l2.setBounds(200, 180, 150, 24); add(l2);
+            JTextField tfBooking = new JTextField(); tfBooking.setBounds(360, 180, 160, 26); add(tfBooking);
+            JButton btnDischarge = new JButton("Discharge"); btnDischarge.setBounds(540, 180, 140, 26); add(btnDischarge);
+
+            JButton btnBack = new JButton("Back"); btnBack.setBounds(470, 500, 160, 36); add(btnBack);
+
+            btnDischarge.addActionListener(e -> {
+                int bookingId;
+                try {
+                    bookingId = Integer.parseInt(tfBooking.getText().trim());
+                } catch (NumberFormatException ex) {
+                    showDialog("Enter a booking ID", "Error", JOptionPane.ERROR_MESSAGE); return;
+                }
+                try {
+                    if (db.dischargeBooking(bookingId)) {
+                        inventory.reload();
+                        tfBooking.setText("");
+                        showDialog("Booking " + bookingId + " discharged; its bed is free again", "Discharged", JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        showDialog("No active booking " + bookingId, "Info", JOptionPane.WARNING_MESSAGE);
+                    }
+                } catch (SQLException ex) {
+                    showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
+            btnRefresh.addActionListener(e -> loadTrips());
+            btnComplete.addActionListener(e -> {
+                Ambulance a = (Ambulance) cbTrips.getSelectedItem();
+                if (a == null) { showDialog("No ambulance is on a trip", "Info", JOptionPane.WARNING_MESSAGE); return; }
+                try {
+                    dispatcher.release(a.id);
+                    if (bookedAmbulanceId != null && bookedAmbulanceId == a.id) bookedAmbulanceId = null;
+                    showDialog("Ambulance " + a.ambulanceNumber + " is available again", "Trip Complete", JOptionPane.INFORMATION_MESSAGE);
+                } catch (SQLException ex) {
+                    showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+                }
+                loadTrips();
+            });
+            btnBack.addActionListener(e -> cardLayout.show(root, "patient"));
+            addComponentListener(new ComponentAdapter() {
+                @Override public void componentShown(ComponentEvent e) { loadTrips(); }
+            });
+        }
+
+        private void loadTrips() {
+            cbTrips.removeAllItems();
+            try {
+                for (Ambulance a : db.listBusyAmbulances()) {
+                    cbTrips.addItem(a);
+                    if (bookedAmbulanceId != null && bookedAmbulanceId == a.id) cbTrips.setSelectedItem(a);
+                }
+            } catch (SQLException ex) {
+                showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
     }
 
     // -------- helpers --------
 
+    // window close: settle what this terminal still holds, then exit
+    private void exitApp() {
+        if (bookedAmbulanceId != null) {
+            int r = JOptionPane.showConfirmDialog(this, "An ambulance dispatched from this desk is still booked.\nMark its trip complete before exiting?",
+                    "Exit", JOptionPane.YES_NO_CANCEL_OPTION);
+            if (r == JOptionPane.CANCEL_OPTION || r == JOptionPane.CLOSED_OPTION) return;
+            if (r == JOptionPane.YES_OPTION) releaseAmbulance(); // No: it stays booked until a Front Desk marks the trip complete
+        }
+        releaseRoomHold();
+        releaseAppointment();
+        dispose();
+        System.exit(0);
+    }
+
+    // hospital chosen on the hospital page, else the first one (demo default); 0 when none exist
+    private int currentHospitalId() throws SQLException {
+        if (selectedHospitalId > 0) return selectedHospitalId;
+        List<Hospital> list = db.listHospitals();
+        return list.isEmpty() ? 0 : list.get(0).id;
+    }
+
+    private void releaseRoomHold() {
+        try {
+            inventory.release(roomHold);
+            roomHold = null;
+        } catch (SQLException ex) {
+            roomHold = null; // the DB row lapses on its own after HOLD_MS
+            showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // an unpaid appointment is given up when the flow is abandoned
+    private void releaseAppointment() {
+        if (appointment == null) return;
+        try {
+            scheduler.cancel(appointment);
+            appointment = null;
+        } catch (SQLException ex) {
+            showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // dispatch withdrawn or trip finished: hand this desk's vehicle back to the dispatcher
+    private void releaseAmbulance() {
+        if (bookedAmbulanceId == null) return;
+        try {
+            dispatcher.release(bookedAmbulanceId);
+            bookedAmbulanceId = null;
+        } catch (SQLException ex) {
+            showDialog("Database error: " + ex.getMessage(), "DB Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     private void showDialog(String message, String title, int messageType) {
         // Modal dialog with X that only closes the dialog
         final JDialog dlg = new JDialog(this, title, true);